@@ -3,69 +3,119 @@ package org.example.ntp;
 import org.apache.commons.net.ntp.*;
 
 import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.text.NumberFormat;
 import java.time.Duration;
-import java.time.LocalDateTime;
+import java.time.Instant;
 import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
-import java.util.List;
-import java.util.Locale;
 import java.util.TimerTask;
 import java.util.concurrent.CountDownLatch;
 
 public class ExampleOrgNTPClient extends TimerTask {
 
     private static final NumberFormat numberFormat = new java.text.DecimalFormat("0.00");
+    // We want to timeout if a response takes longer than 10 seconds
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
     private final CountDownLatch countDownLatch;
     private final String ntpServerIp;
+    private final NtpCaptureWriter capture;
     HashMap<String,Object> output;
 
     ExampleOrgNTPClient(CountDownLatch countDownLatch, String ntpServerIp, HashMap<String,Object> output)
+    {
+        this(countDownLatch, ntpServerIp, output, null);
+    }
+
+    ExampleOrgNTPClient(CountDownLatch countDownLatch, String ntpServerIp, HashMap<String,Object> output, NtpCaptureWriter capture)
     {
         this.countDownLatch = countDownLatch;
         this.ntpServerIp = ntpServerIp;
         this.output = output;
+        this.capture = capture;
     }
 
     @Override
     public void run()
     {
-        final NTPUDPClient client = new NTPUDPClient();
-        // We want to timeout if a response takes longer than 10 seconds
-        client.setDefaultTimeout(Duration.ofSeconds(10));
         try {
-            client.open();
-            
-                try {
-                    final InetAddress hostAddr = InetAddress.getByName(ntpServerIp);
-                    System.out.println("> " + hostAddr.getHostName() + "/" + hostAddr.getHostAddress());
-                    final TimeInfo info = client.getTime(hostAddr);
-                    processResponse(info);
-                } catch (final IOException ioe) {
-                    ioe.printStackTrace();
-                }
-
-        } catch (final SocketException e) {
-            e.printStackTrace();
+            final InetAddress hostAddr = InetAddress.getByName(ntpServerIp);
+            System.out.println("> " + hostAddr.getHostName() + "/" + hostAddr.getHostAddress());
+            final TimeInfo info = capture == null ? getTime(hostAddr) : getTimeCaptured(hostAddr, NtpV3Packet.NTP_PORT, NtpV3Packet.VERSION_3);
+            processResponse(info);
+        } catch (final IOException ioe) {
+            ioe.printStackTrace();
         }
         finally {
             countDownLatch.countDown();
         }
+    }
 
-        client.close();
+    private static TimeInfo getTime(final InetAddress hostAddr) throws IOException {
+        final NTPUDPClient client = new NTPUDPClient();
+        client.setDefaultTimeout(TIMEOUT);
+        try {
+            client.open();
+            return client.getTime(hostAddr);
+        } finally {
+            client.close();
+        }
     }
+
+    // Same exchange as NTPUDPClient.getTime, but on a socket we own so that the request actually sent, the reply and the
+    // local t1/t4 can be recorded before anything interprets them. Capture is a diagnostic: if recording fails, the
+    // failure is reported and the reply is still returned.
+    TimeInfo getTimeCaptured(final InetAddress hostAddr, final int port, final int version) throws IOException {
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.setSoTimeout((int) TIMEOUT.toMillis());
+
+            final NtpV3Packet request = new NtpV3Impl();
+            request.setMode(NtpV3Packet.MODE_CLIENT);
+            request.setVersion(version);
+            final DatagramPacket requestPacket = request.getDatagramPacket();
+            requestPacket.setAddress(hostAddr);
+            requestPacket.setPort(port);
+
+            final NtpV3Packet reply = new NtpV3Impl();
+            final DatagramPacket replyPacket = reply.getDatagramPacket();
+
+            final long t1 = System.currentTimeMillis();
+            request.setTransmitTime(TimeStamp.getNtpTime(t1));
+            socket.send(requestPacket);
+            socket.receive(replyPacket);
+            final long t4 = System.currentTimeMillis();
+
+            try {
+                capture.write(t1, t4, requestPacket.getData(), requestPacket.getOffset(), requestPacket.getLength(),
+                        replyPacket.getData(), replyPacket.getOffset(), replyPacket.getLength());
+            } catch (final IOException ioe) {
+                System.err.println("capture of reply from " + hostAddr.getHostAddress() + " failed: " + ioe);
+            }
+
+            return new TimeInfo(reply, t4, false);
+        }
+    }
+
     public void processResponse(final TimeInfo info) {
+        System.out.println("OUTPUT FROM " + Thread.currentThread() + "\n" + describeResponse(info, HostNameResolver.DNS));
+    }
+
+    /**
+     * Fills {@link #output} from the reply and returns the human readable report without printing it, so that replay
+     * can run the conversion without paying for console output. Nothing in it depends on the calling thread or the
+     * local time zone, so replaying the same capture always gives the same result.
+     *
+     * @param resolver looks up the reference identifier of stratum 2+ replies; replay passes one that stays off the
+     *                 network.
+     */
+    String describeResponse(final TimeInfo info, final HostNameResolver resolver) {
         final NtpV3Packet message = info.getMessage();
         
         StringBuilder sb = new StringBuilder();
 
-        sb.append("OUTPUT FROM ").append(Thread.currentThread()).append("\n");
-        
         final int stratum = message.getStratum();
         final String refType;
         if (stratum <= 0) {
@@ -106,8 +156,7 @@ public class ExampleOrgNTPClient extends TimerTask {
                 // for GENERIC DCF77 AM; see refclock.htm from the NTP software distribution.
                 if (!refAddr.startsWith("127.127")) {
                     try {
-                        final InetAddress addr = InetAddress.getByName(refAddr);
-                        final String name = addr.getHostName();
+                        final String name = resolver.getHostName(refAddr);
                         if (name != null && !name.equals(refAddr)) {
                             refName = name;
                         }
@@ -132,29 +181,34 @@ public class ExampleOrgNTPClient extends TimerTask {
 
         final TimeStamp refNtpTime = message.getReferenceTimeStamp();
 
-        sb.append(" Reference Timestamp:\t" /*+ refNtpTime + "  "*/ + convertToControllerTime(refNtpTime.toDateString())).append("\n");
-        output.put("referenceTimestamp", convertToControllerTime(refNtpTime.toDateString()));
+        final String refTime = convertToControllerTime(refNtpTime);
+        sb.append(" Reference Timestamp:\t" /*+ refNtpTime + "  "*/ + refTime).append("\n");
+        output.put("referenceTimestamp", refTime);
 
         // Originate Time is time request sent by client (t1)
         final TimeStamp origNtpTime = message.getOriginateTimeStamp();
-        sb.append(" Originate Timestamp:\t" /*+ origNtpTime + "  "*/ + convertToControllerTime(origNtpTime.toDateString())).append("\n");
-        output.put("originateTimestamp", convertToControllerTime(origNtpTime.toDateString()));
+        final String origTime = convertToControllerTime(origNtpTime);
+        sb.append(" Originate Timestamp:\t" /*+ origNtpTime + "  "*/ + origTime).append("\n");
+        output.put("originateTimestamp", origTime);
 
         final long destTimeMillis = info.getReturnTime();
         // Receive Time is time request received by server (t2)
         final TimeStamp rcvNtpTime = message.getReceiveTimeStamp();
-        sb.append(" Receive Timestamp:\t" /*+ rcvNtpTime + "  "*/ + convertToControllerTime(rcvNtpTime.toDateString())).append("\n");
-        output.put("receiveTimestamp", convertToControllerTime(rcvNtpTime.toDateString()));
+        final String rcvTime = convertToControllerTime(rcvNtpTime);
+        sb.append(" Receive Timestamp:\t" /*+ rcvNtpTime + "  "*/ + rcvTime).append("\n");
+        output.put("receiveTimestamp", rcvTime);
 
         // Transmit time is time reply sent by server (t3)
         final TimeStamp xmitNtpTime = message.getTransmitTimeStamp();
-        sb.append(" Transmit Timestamp:\t" /*+ xmitNtpTime + "  "*/ + convertToControllerTime(xmitNtpTime.toDateString())).append("\n");
-        output.put("transmitTimestamp", convertToControllerTime(xmitNtpTime.toDateString()));
+        final String xmitTime = convertToControllerTime(xmitNtpTime);
+        sb.append(" Transmit Timestamp:\t" /*+ xmitNtpTime + "  "*/ + xmitTime).append("\n");
+        output.put("transmitTimestamp", xmitTime);
 
         // Destination time is time reply received by client (t4)
         final TimeStamp destNtpTime = TimeStamp.getNtpTime(destTimeMillis);
-        sb.append(" Destination Timestamp:\t" /*+ destNtpTime + "  "*/ + convertToControllerTime(destNtpTime.toDateString())).append("\n");
-        output.put("destinationTimestamp", convertToControllerTime(destNtpTime.toDateString()));
+        final String destTime = convertToControllerTime(destNtpTime);
+        sb.append(" Destination Timestamp:\t" /*+ destNtpTime + "  "*/ + destTime).append("\n");
+        output.put("destinationTimestamp", destTime);
 
         info.computeDetails(); // compute offset/delay if not already done
         final Long offsetMillis = info.getOffset();
@@ -165,25 +219,20 @@ public class ExampleOrgNTPClient extends TimerTask {
         sb.append(" Roundtrip delay(ms)=" + delay + ", clock offset(ms)=" + offset).append("\n"); // offset in ms
         output.put("computedDetails", " Roundtrip delay(ms)=" + delay + ", clock offset(ms)=" + offset);
 
-        System.out.println(sb.toString());
+        return sb.toString();
     }
 
-    private String convertToControllerTime(String clientTime)
+    private String convertToControllerTime(TimeStamp ntpTime)
     {
-        LocalDateTime clientDateTime = LocalDateTime.parse(clientTime,DateTimeFormatter.ofPattern("EEE, MMM dd yyyy HH:mm:ss.SSS", Locale.US));
-
-        LocalDateTime formattedClientDateTime = LocalDateTime.parse(clientDateTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SS")));
+        // straight from the instant, so the result does not depend on the time zone of the client host; truncated to
+        // hundredths of a second like the report has always shown
+        long millis = ntpTime.getTime();
 
-        ZoneId clientZoneId = ZoneId.systemDefault();
-
-        ZonedDateTime clientZonedDateTime = formattedClientDateTime.atZone(clientZoneId);
+        Instant instant = Instant.ofEpochMilli(millis - Math.floorMod(millis, 10));
 
         ZoneId controllerZoneId = ZoneId.of(ExampleOrgNTPClientExecutor.getControllerTimezone());
 
-        ZonedDateTime controllerDateTime = clientZonedDateTime.withZoneSameInstant(controllerZoneId);
-
-        return controllerDateTime.toLocalDateTime().toString();
-
+        return instant.atZone(controllerZoneId).toLocalDateTime().toString();
     }
 
 //    public static void main(String[] args) {
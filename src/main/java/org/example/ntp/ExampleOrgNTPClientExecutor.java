@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Paths;
 import java.text.DateFormat;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
@@ -29,17 +30,26 @@ public class ExampleOrgNTPClientExecutor
 
     public static void main(String[] args)
     {
+        NtpCaptureWriter capture = null;
+
         try
         {
             //old string "2024-03-19T15:01:42.531972"
 
 //            args = new String[]{"2024-03-28T7:28:00","Asia/Kolkata","172.16.13.81"};
 
+            // optional 4th argument: file to record the raw packets to, see NtpCaptureReplay
+
             if (args!=null && args.length > 0)
             {
 
                 setControllerTimezone(args[1]);
 
+                if (args.length > 3)
+                {
+                    capture = new NtpCaptureWriter(Paths.get(args[3]));
+                }
+
                 LocalDateTime controllerDateTime = LocalDateTime.parse(args[0]);
 
                 ZoneId controllerZoneId = ZoneId.of(args[1]);
@@ -76,7 +86,7 @@ public class ExampleOrgNTPClientExecutor
 
                     outputs.add(output);
 
-                    new Timer().schedule(new ExampleOrgNTPClient(countDownLatch, args[2], output), scheduleDate);
+                    new Timer().schedule(new ExampleOrgNTPClient(countDownLatch, args[2], output, capture), scheduleDate);
                 }
 
                 logger.info("after the run statement");
@@ -98,6 +108,17 @@ public class ExampleOrgNTPClientExecutor
             exception.printStackTrace();
         }
         finally {
+            if (capture != null)
+            {
+                try
+                {
+                    capture.close();
+                }
+                catch (Exception exception)
+                {
+                    exception.printStackTrace();
+                }
+            }
             System.exit(0);
         }
     }
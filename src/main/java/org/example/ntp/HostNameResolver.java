@@ -0,0 +1,27 @@
+package org.example.ntp;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Turns the reference identifier of a stratum 2+ reply into a host name for the report.
+ */
+public interface HostNameResolver
+{
+    /**
+     * Reverse lookup through the system resolver, as done for live replies.
+     */
+    HostNameResolver DNS = address -> InetAddress.getByName(address).getHostName();
+
+    /**
+     * No lookup; the address is reported as is. Used by replay so that its output does not depend on the network.
+     */
+    HostNameResolver NONE = address -> address;
+
+    /**
+     * @param address dotted reference address.
+     * @return the host name, or <code>address</code> itself if it has none.
+     * @throws UnknownHostException if the address cannot be looked up at all.
+     */
+    String getHostName(String address) throws UnknownHostException;
+}
@@ -0,0 +1,168 @@
+package org.example.ntp;
+
+import org.apache.commons.net.ntp.NtpV3Impl;
+import org.apache.commons.net.ntp.NtpV3Packet;
+import org.apache.commons.net.ntp.TimeInfo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a file written by {@link NtpCaptureWriter}. The file is memory-mapped, so iterating it again with
+ * {@link #rewind()} costs no I/O once the pages are resident.
+ */
+public class NtpCaptureReader implements Closeable
+{
+    private static final int HEADER_SIZE = 8;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer buffer;
+
+    public NtpCaptureReader(Path file) throws IOException
+    {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+
+        try
+        {
+            long size = channel.size();
+
+            if (size > Integer.MAX_VALUE)
+            {
+                throw new IOException("capture file too large to map: " + file + " (" + size + " bytes)");
+            }
+
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            if (size < HEADER_SIZE || buffer.getInt() != NtpCaptureWriter.MAGIC)
+            {
+                throw new IOException("not an NTP capture file: " + file);
+            }
+
+            int version = buffer.getInt();
+
+            if (version != NtpCaptureWriter.VERSION)
+            {
+                throw new IOException("unsupported capture file version " + version + ": " + file);
+            }
+        }
+        catch (IOException exception)
+        {
+            channel.close();
+
+            throw exception;
+        }
+    }
+
+    public boolean hasNext()
+    {
+        return buffer.hasRemaining();
+    }
+
+    /**
+     * @return the next record.
+     * @throws IOException if the file ends in the middle of a record.
+     */
+    public Record next() throws IOException
+    {
+        try
+        {
+            final long t1 = buffer.getLong();
+            final long t4 = buffer.getLong();
+
+            final byte[] request = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(request);
+
+            final byte[] reply = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(reply);
+
+            return new Record(t1, t4, request, reply);
+        }
+        catch (BufferUnderflowException exception)
+        {
+            throw new IOException("truncated record at offset " + buffer.position(), exception);
+        }
+    }
+
+    /**
+     * Moves back to the first record.
+     */
+    public void rewind()
+    {
+        buffer.position(HEADER_SIZE);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    public static final class Record
+    {
+        private final long t1;
+
+        private final long t4;
+
+        private final byte[] request;
+
+        private final byte[] reply;
+
+        Record(long t1, long t4, byte[] request, byte[] reply)
+        {
+            this.t1 = t1;
+            this.t4 = t4;
+            this.request = request;
+            this.reply = reply;
+        }
+
+        public long getT1()
+        {
+            return t1;
+        }
+
+        public long getT4()
+        {
+            return t4;
+        }
+
+        public byte[] getRequest()
+        {
+            return request;
+        }
+
+        public byte[] getReply()
+        {
+            return reply;
+        }
+
+        /**
+         * Decodes the reply the same way <code>NTPUDPClient.getTime</code> does after receiving it: the bytes land in
+         * the packet's 48-byte buffer, anything beyond it is cut off and a short reply leaves the rest zeroed.
+         * <code>setDatagramPacket</code> is not used because it rejects short packets, which are exactly the ones worth
+         * replaying.
+         *
+         * @return the reply as it was handed to the client, details not yet computed.
+         */
+        public TimeInfo toTimeInfo()
+        {
+            final NtpV3Packet message = new NtpV3Impl();
+
+            final DatagramPacket packet = message.getDatagramPacket();
+
+            final int length = Math.min(reply.length, packet.getData().length - packet.getOffset());
+
+            System.arraycopy(reply, 0, packet.getData(), packet.getOffset(), length);
+
+            packet.setLength(length);
+
+            return new TimeInfo(message, t4, false);
+        }
+    }
+}
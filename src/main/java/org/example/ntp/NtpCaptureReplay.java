@@ -0,0 +1,161 @@
+package org.example.ntp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.net.ntp.TimeInfo;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Pushes the packets recorded by {@link NtpCaptureWriter} through the same stages a live run uses (decode, conversion
+ * to controller time, aggregation and JSON serialization) as fast as possible and prints the throughput of each stage.
+ * Everything except the network is exercised, so the numbers are the ceiling for a live run. Reference identifiers are
+ * reported as addresses instead of being looked up, which also keeps the output the same on every host.
+ * <p>
+ * Usage: NtpCaptureReplay &lt;capture-file&gt; &lt;controller-timezone&gt; [passes]
+ * </p>
+ * <p>
+ * Example: NtpCaptureReplay ntp.capture Asia/Kolkata 10
+ * </p>
+ * The first passes include JIT warm-up; compare the later ones.
+ */
+public final class NtpCaptureReplay
+{
+    private static final String USAGE = "Usage: NtpCaptureReplay <capture-file> <controller-timezone> [passes]";
+
+    public static void main(String[] args)
+    {
+        if (args.length < 2)
+        {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        ExampleOrgNTPClientExecutor.setControllerTimezone(args[1]);
+
+        final int passes = args.length > 2 ? parsePasses(args[2]) : 5;
+
+        if (passes <= 0)
+        {
+            System.err.println("passes must be a positive number: " + args[2]);
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        final ObjectMapper objectMapper = new ObjectMapper();
+
+        try (NtpCaptureReader reader = new NtpCaptureReader(Paths.get(args[0])))
+        {
+            for (int pass = 1; pass <= passes; pass++)
+            {
+                // each stage runs over the whole capture before the next one starts, so it can be timed on its own
+                long start = System.nanoTime();
+
+                final List<TimeInfo> infos = decode(reader);
+
+                final long decoded = System.nanoTime();
+
+                final List<HashMap<String, Object>> outputs = new ArrayList<>(infos.size());
+
+                final List<String> reports = convert(infos, outputs);
+
+                final long converted = System.nanoTime();
+
+                ExampleOrgSocketClient.execute(outputs);
+
+                final long aggregated = System.nanoTime();
+
+                final byte[] json = objectMapper.writeValueAsBytes(outputs);
+
+                final long serialized = System.nanoTime();
+
+                final int records = infos.size();
+
+                long reportChars = 0;
+
+                for (String report : reports)
+                {
+                    reportChars += report.length();
+                }
+
+                System.out.println("pass " + pass + ": " + records + " records, " + reportChars + " report chars, " + json.length + " JSON bytes");
+                System.out.println("  decode     " + rate(records, decoded - start));
+                System.out.println("  convert    " + rate(records, converted - decoded));
+                System.out.println("  aggregate  " + rate(records, aggregated - converted));
+                System.out.println("  serialize  " + rate(records, serialized - aggregated));
+                System.out.println("  total      " + rate(records, serialized - start));
+            }
+        }
+        catch (Exception exception)
+        {
+            exception.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Decode stage: reads every record from the start of the capture.
+     */
+    static List<TimeInfo> decode(NtpCaptureReader reader) throws IOException
+    {
+        reader.rewind();
+
+        final List<TimeInfo> infos = new ArrayList<>();
+
+        while (reader.hasNext())
+        {
+            infos.add(reader.next().toTimeInfo());
+        }
+
+        return infos;
+    }
+
+    /**
+     * Conversion stage: fills one output map per reply, exactly like a live client but without name lookups.
+     *
+     * @return the text report of each reply.
+     */
+    static List<String> convert(List<TimeInfo> infos, List<HashMap<String, Object>> outputs)
+    {
+        final CountDownLatch unused = new CountDownLatch(0);
+
+        final List<String> reports = new ArrayList<>(infos.size());
+
+        for (TimeInfo info : infos)
+        {
+            HashMap<String, Object> output = new HashMap<>();
+
+            outputs.add(output);
+
+            reports.add(new ExampleOrgNTPClient(unused, null, output).describeResponse(info, HostNameResolver.NONE));
+        }
+
+        return reports;
+    }
+
+    // 0 for anything that is not a number, so that it is rejected together with non-positive counts
+    private static int parsePasses(String passes)
+    {
+        try
+        {
+            return Integer.parseInt(passes);
+        }
+        catch (NumberFormatException exception)
+        {
+            return 0;
+        }
+    }
+
+    private static String rate(int records, long nanos)
+    {
+        final double millis = nanos / 1_000_000.0;
+
+        final long perSecond = nanos == 0 ? 0 : (long) (records * 1_000_000_000.0 / nanos);
+
+        return String.format("%10.3f ms  %,12d records/s", millis, perSecond);
+    }
+}
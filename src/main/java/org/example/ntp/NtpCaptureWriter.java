@@ -0,0 +1,85 @@
+package org.example.ntp;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Records raw NTP request/reply packets to a compact binary file so that they can be pushed through the processing
+ * pipeline again by {@link NtpCaptureReplay}.
+ * <p>
+ * File layout (big-endian): the int {@link #MAGIC} and the int {@link #VERSION}, followed by one record per exchange:
+ * </p>
+ * <pre>
+ * long  t1            local clock when the request was sent (Java millis)
+ * long  t4            local clock when the reply arrived (Java millis)
+ * short requestLength
+ * byte  request[requestLength]  exactly as sent
+ * short replyLength
+ * byte  reply[replyLength]      exactly as received
+ * </pre>
+ * Writes go through a buffer and are synchronized, so one writer can be shared by several client threads. After a failed
+ * write the writer refuses all further records, since a partly written record would make the rest of the file unreadable.
+ */
+public class NtpCaptureWriter implements Closeable
+{
+    public static final int MAGIC = 0x4E545043; // "NTPC"
+
+    public static final int VERSION = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DataOutputStream out;
+
+    private IOException failure;
+
+    public NtpCaptureWriter(Path file) throws IOException
+    {
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE));
+
+        out.writeInt(MAGIC);
+
+        out.writeInt(VERSION);
+    }
+
+    /**
+     * Appends one exchange.
+     *
+     * @param t1 local clock when the request was sent (Java millis).
+     * @param t4 local clock when the reply arrived (Java millis).
+     * @throws IOException if the record could not be written, or an earlier one already failed.
+     */
+    public synchronized void write(long t1, long t4, byte[] request, int requestOffset, int requestLength,
+                                   byte[] reply, int replyOffset, int replyLength) throws IOException
+    {
+        if (failure != null)
+        {
+            throw new IOException("capture disabled after an earlier write failed", failure);
+        }
+
+        try
+        {
+            out.writeLong(t1);
+            out.writeLong(t4);
+            out.writeShort(requestLength);
+            out.write(request, requestOffset, requestLength);
+            out.writeShort(replyLength);
+            out.write(reply, replyOffset, replyLength);
+        }
+        catch (IOException exception)
+        {
+            failure = exception;
+
+            throw exception;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        out.close();
+    }
+}
@@ -0,0 +1,379 @@
+package org.example.ntp;
+
+import org.apache.commons.net.ntp.NTPUDPClient;
+import org.apache.commons.net.ntp.TimeInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongSupplier;
+
+/**
+ * Embeddable alternative to the command line clients. Results are served from a per server cache as long as the last
+ * good reply is younger than the configured maximum age; otherwise a probe is started. Concurrent callers asking for the
+ * same server while a probe is outstanding share that probe instead of sending their own request (single-flight), and a
+ * failed probe is remembered for a short backoff, so a high request rate from application threads turns into about one
+ * packet per server per maximum age, whether the server answers or not.
+ * <p>
+ * Example:
+ * </p>
+ * <pre>
+ * NtpTimeService service = new NtpTimeService(Duration.ofSeconds(30));
+ * long offset = service.getOffset("172.16.13.81").join();
+ * </pre>
+ */
+public class NtpTimeService implements AutoCloseable
+{
+    private static final Logger logger = LoggerFactory.getLogger("NtpTimeService");
+
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(10);
+
+    private static final Duration DEFAULT_FAILURE_BACKOFF = Duration.ofSeconds(5);
+
+    // head room on top of the socket timeout for name resolution and waiting for an executor thread
+    private static final Duration PROBE_DEADLINE_MARGIN = Duration.ofSeconds(5);
+
+    private final long maxAgeNanos;
+
+    private final long failureBackoffNanos;
+
+    private final long probeDeadlineNanos;
+
+    private final Executor executor;
+
+    // only set when the executor was created here and therefore has to be shut down by close()
+    private final ExecutorService ownedExecutor;
+
+    private final Prober prober;
+
+    private final LongSupplier nanoClock;
+
+    private final ConcurrentHashMap<String, Sample> cache = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, CompletableFuture<TimeInfo>> inFlight = new ConcurrentHashMap<>();
+
+    public NtpTimeService(Duration maxAge)
+    {
+        this(maxAge, DEFAULT_TIMEOUT);
+    }
+
+    public NtpTimeService(Duration maxAge, Duration timeout)
+    {
+        this(maxAge, timeout, null);
+    }
+
+    public NtpTimeService(Duration maxAge, Duration timeout, Executor executor)
+    {
+        this(maxAge, timeout, DEFAULT_FAILURE_BACKOFF, executor);
+    }
+
+    /**
+     * @param maxAge         how long a good reply is served from the cache before a new probe is sent.
+     * @param timeout        socket timeout of a single probe.
+     * @param failureBackoff how long a failed probe is reported to callers before the server is probed again.
+     * @param executor       runs the blocking probes; when <code>null</code> a pool of daemon threads is created and
+     *                       shut down by {@link #close()}.
+     */
+    public NtpTimeService(Duration maxAge, Duration timeout, Duration failureBackoff, Executor executor)
+    {
+        this(maxAge, failureBackoff, checkTimeout(timeout).plus(PROBE_DEADLINE_MARGIN), executor,
+                ntpServer -> probe(ntpServer, timeout), System::nanoTime);
+    }
+
+    NtpTimeService(Duration maxAge, Duration failureBackoff, Duration probeDeadline, Executor executor, Prober prober,
+                   LongSupplier nanoClock)
+    {
+        if (maxAge == null || maxAge.isNegative())
+        {
+            throw new IllegalArgumentException("maxAge must be zero or positive: " + maxAge);
+        }
+
+        if (failureBackoff == null || failureBackoff.isNegative())
+        {
+            throw new IllegalArgumentException("failureBackoff must be zero or positive: " + failureBackoff);
+        }
+
+        this.maxAgeNanos = maxAge.toNanos();
+
+        this.failureBackoffNanos = failureBackoff.toNanos();
+
+        this.probeDeadlineNanos = probeDeadline.toNanos();
+
+        this.prober = prober;
+
+        this.nanoClock = nanoClock;
+
+        if (executor == null)
+        {
+            this.ownedExecutor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "ntp-time-service");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            this.executor = ownedExecutor;
+        }
+        else
+        {
+            this.ownedExecutor = null;
+
+            this.executor = executor;
+        }
+    }
+
+    /**
+     * Returns the clock offset in milliseconds (server time minus local time) for the given server.
+     *
+     * @param ntpServer host name or address of the NTP server.
+     * @return future completed with the offset, or exceptionally if the probe failed.
+     */
+    public CompletableFuture<Long> getOffset(String ntpServer)
+    {
+        return getTimeInfo(ntpServer).thenApply(TimeInfo::getOffset);
+    }
+
+    /**
+     * Returns the last good reply for the given server, probing it first if the cached reply is missing or older than
+     * the maximum age. The returned <code>TimeInfo</code> has its details computed and is shared between callers, so it
+     * must be treated as read-only. While a failed probe is younger than the failure backoff, its exception is returned
+     * without probing again.
+     *
+     * @param ntpServer host name or address of the NTP server.
+     * @return future completed with the reply, or exceptionally if the probe failed or did not finish in time.
+     */
+    public CompletableFuture<TimeInfo> getTimeInfo(String ntpServer)
+    {
+        Sample sample = freshSample(ntpServer);
+
+        if (sample != null)
+        {
+            return sample.toFuture();
+        }
+
+        CompletableFuture<TimeInfo> shared = new CompletableFuture<>();
+
+        CompletableFuture<TimeInfo> existing = inFlight.putIfAbsent(ntpServer, shared);
+
+        if (existing == null)
+        {
+            existing = shared;
+
+            // another probe may have finished between the cache lookup and claiming the slot
+            sample = freshSample(ntpServer);
+
+            if (sample != null)
+            {
+                inFlight.remove(ntpServer, shared);
+
+                complete(shared, sample.info, sample.failure);
+
+                return sample.toFuture();
+            }
+
+            CompletableFuture<TimeInfo> probe = new CompletableFuture<>();
+
+            // the deadline also covers executors that silently drop the task, which would otherwise leave the slot
+            // taken and every later caller for this server waiting forever; the slot is released before the callers
+            // see the result, so none of them can pick up a finished probe
+            probe.orTimeout(probeDeadlineNanos, TimeUnit.NANOSECONDS).whenComplete((info, failure) -> {
+                finish(ntpServer, shared, failure);
+
+                if (failure instanceof TimeoutException)
+                {
+                    // the deadline fires on the JDK-wide delay scheduler thread, which must not run the callers'
+                    // continuations; the service executor is no option either, it may be the one that lost the task
+                    CompletableFuture.runAsync(() -> complete(shared, info, failure));
+                }
+                else
+                {
+                    complete(shared, info, failure);
+                }
+            });
+
+            try
+            {
+                executor.execute(() -> run(ntpServer, probe));
+            }
+            catch (RejectedExecutionException exception)
+            {
+                probe.completeExceptionally(exception);
+            }
+        }
+
+        // callers must not be able to complete or cancel the shared probe on behalf of the others
+        return existing.thenApply(info -> info);
+    }
+
+    /**
+     * Drops the cached reply or failure for the given server so that the next call probes it again.
+     *
+     * @param ntpServer host name or address of the NTP server.
+     */
+    public void invalidate(String ntpServer)
+    {
+        cache.remove(ntpServer);
+    }
+
+    @Override
+    public void close()
+    {
+        if (ownedExecutor != null)
+        {
+            ownedExecutor.shutdownNow();
+        }
+    }
+
+    private Sample freshSample(String ntpServer)
+    {
+        Sample sample = cache.get(ntpServer);
+
+        if (sample == null)
+        {
+            return null;
+        }
+
+        long age = nanoClock.getAsLong() - sample.createdAtNanos;
+
+        return age <= (sample.failure != null ? failureBackoffNanos : maxAgeNanos) ? sample : null;
+    }
+
+    private void run(String ntpServer, CompletableFuture<TimeInfo> probe)
+    {
+        if (probe.isDone())
+        {
+            return; // gave up waiting for this task already
+        }
+
+        try
+        {
+            final TimeInfo info = prober.probe(ntpServer);
+
+            // publish before completing so that callers reacting to the result already see it cached
+            cache.put(ntpServer, new Sample(info, null, nanoClock.getAsLong()));
+
+            probe.complete(info);
+        }
+        catch (Exception exception)
+        {
+            probe.completeExceptionally(exception);
+        }
+    }
+
+    private void finish(String ntpServer, CompletableFuture<TimeInfo> probe, Throwable failure)
+    {
+        if (failure != null)
+        {
+            Sample previous = cache.put(ntpServer, new Sample(null, failure, nanoClock.getAsLong()));
+
+            // one warning when a server starts failing, the repeats after every backoff only at debug level
+            if (previous == null || previous.failure == null)
+            {
+                logger.warn("NTP probe to {} failed, retrying in {} ms: {}", ntpServer,
+                        TimeUnit.NANOSECONDS.toMillis(failureBackoffNanos), failure.toString());
+            }
+            else
+            {
+                logger.debug("NTP probe to {} failed again", ntpServer, failure);
+            }
+        }
+
+        inFlight.remove(ntpServer, probe);
+    }
+
+    private static void complete(CompletableFuture<TimeInfo> probe, TimeInfo info, Throwable failure)
+    {
+        if (failure == null)
+        {
+            probe.complete(info);
+        }
+        else
+        {
+            probe.completeExceptionally(failure);
+        }
+    }
+
+    private static TimeInfo probe(String ntpServer, Duration timeout) throws IOException
+    {
+        final NTPUDPClient client = new NTPUDPClient();
+
+        client.setDefaultTimeout(timeout);
+
+        try
+        {
+            client.open();
+
+            final TimeInfo info = client.getTime(InetAddress.getByName(ntpServer));
+
+            info.computeDetails(); // compute offset/delay once, before the reply is shared
+
+            if (info.getOffset() == null)
+            {
+                throw new IOException("no usable offset in reply from " + ntpServer + ": " + info.getComments());
+            }
+
+            return info;
+        }
+        finally
+        {
+            client.close();
+        }
+    }
+
+    private static Duration checkTimeout(Duration timeout)
+    {
+        if (timeout == null || timeout.isNegative() || timeout.isZero())
+        {
+            throw new IllegalArgumentException("timeout must be positive: " + timeout);
+        }
+
+        return timeout;
+    }
+
+    /**
+     * Sends one request to a server and returns its reply; replaced by a fake in tests.
+     */
+    interface Prober
+    {
+        TimeInfo probe(String ntpServer) throws Exception;
+    }
+
+    private static final class Sample
+    {
+        private final TimeInfo info;
+
+        private final Throwable failure;
+
+        private final long createdAtNanos;
+
+        private Sample(TimeInfo info, Throwable failure, long createdAtNanos)
+        {
+            this.info = info;
+
+            this.failure = failure;
+
+            this.createdAtNanos = createdAtNanos;
+        }
+
+        // a failure goes through a dependent stage like the shared probe does, so callers always see it wrapped in a
+        // CompletionException, whether it comes from the cache or from the probe they waited for
+        private CompletableFuture<TimeInfo> toFuture()
+        {
+            if (failure != null)
+            {
+                return CompletableFuture.<TimeInfo>failedFuture(failure).thenApply(info -> info);
+            }
+
+            return CompletableFuture.completedFuture(info);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package org.example.ntp;
+
+import org.apache.commons.net.ntp.NtpV3Impl;
+import org.apache.commons.net.ntp.NtpV3Packet;
+import org.apache.commons.net.ntp.TimeInfo;
+import org.apache.commons.net.ntp.TimeStamp;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class ExampleOrgNTPClientTest
+{
+    @TempDir
+    Path dir;
+
+    private DatagramSocket server;
+
+    private Thread serverThread;
+
+    private String controllerTimezone;
+
+    @BeforeEach
+    void startServer() throws IOException
+    {
+        controllerTimezone = ExampleOrgNTPClientExecutor.getControllerTimezone();
+        ExampleOrgNTPClientExecutor.setControllerTimezone("UTC");
+
+        // answers a single request like a stratum 1 server would
+        server = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        serverThread = new Thread(() -> {
+            try
+            {
+                NtpV3Packet request = new NtpV3Impl();
+                DatagramPacket requestPacket = request.getDatagramPacket();
+                server.receive(requestPacket);
+
+                NtpV3Packet reply = new NtpV3Impl();
+                reply.setMode(NtpV3Packet.MODE_SERVER);
+                reply.setVersion(request.getVersion());
+                reply.setStratum(1);
+                reply.setOriginateTimeStamp(request.getTransmitTimeStamp());
+                reply.setReceiveTimeStamp(TimeStamp.getCurrentTime());
+                reply.setTransmitTime(TimeStamp.getCurrentTime());
+                DatagramPacket replyPacket = reply.getDatagramPacket();
+                replyPacket.setSocketAddress(requestPacket.getSocketAddress());
+                server.send(replyPacket);
+            }
+            catch (IOException ignored)
+            {
+                // socket closed by the test
+            }
+        });
+        serverThread.start();
+    }
+
+    @AfterEach
+    void stopServer() throws InterruptedException
+    {
+        server.close();
+        serverThread.join();
+        ExampleOrgNTPClientExecutor.setControllerTimezone(controllerTimezone);
+    }
+
+    @Test
+    void failingCaptureDoesNotLoseTheReply() throws IOException
+    {
+        AtomicInteger attempts = new AtomicInteger();
+        NtpCaptureWriter capture = new NtpCaptureWriter(dir.resolve("failing.capture"))
+        {
+            @Override
+            public synchronized void write(long t1, long t4, byte[] request, int requestOffset, int requestLength,
+                                           byte[] reply, int replyOffset, int replyLength) throws IOException
+            {
+                attempts.incrementAndGet();
+                throw new IOException("No space left on device");
+            }
+        };
+
+        HashMap<String, Object> output = new HashMap<>();
+        ExampleOrgNTPClient client = new ExampleOrgNTPClient(new CountDownLatch(1), "127.0.0.1", output, capture);
+
+        TimeInfo info = client.getTimeCaptured(InetAddress.getLoopbackAddress(), server.getLocalPort(), NtpV3Packet.VERSION_3);
+        client.describeResponse(info, HostNameResolver.NONE);
+
+        assertEquals(1, attempts.get());
+        assertEquals(1, info.getMessage().getStratum());
+        assertNotNull(info.getOffset());
+        assertEquals("1 (Primary Reference; e.g., GPS)", output.get("stratum"));
+        capture.close();
+    }
+}
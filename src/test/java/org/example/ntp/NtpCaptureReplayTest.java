@@ -0,0 +1,164 @@
+package org.example.ntp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.net.ntp.NtpV3Impl;
+import org.apache.commons.net.ntp.NtpV3Packet;
+import org.apache.commons.net.ntp.TimeInfo;
+import org.apache.commons.net.ntp.TimeStamp;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.DatagramPacket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class NtpCaptureReplayTest
+{
+    // 2024-03-27T12:00:00Z
+    private static final long T1 = 1711540800000L;
+
+    @TempDir
+    Path dir;
+
+    private TimeZone defaultZone;
+
+    private String controllerTimezone;
+
+    @BeforeEach
+    void rememberZones()
+    {
+        defaultZone = TimeZone.getDefault();
+        controllerTimezone = ExampleOrgNTPClientExecutor.getControllerTimezone();
+        ExampleOrgNTPClientExecutor.setControllerTimezone("Asia/Kolkata");
+    }
+
+    @AfterEach
+    void restoreZones()
+    {
+        TimeZone.setDefault(defaultZone);
+        ExampleOrgNTPClientExecutor.setControllerTimezone(controllerTimezone);
+    }
+
+    private static DatagramPacket request()
+    {
+        NtpV3Packet request = new NtpV3Impl();
+        request.setMode(NtpV3Packet.MODE_CLIENT);
+        request.setVersion(NtpV3Packet.VERSION_3);
+        request.setTransmitTime(TimeStamp.getNtpTime(T1));
+        return request.getDatagramPacket();
+    }
+
+    private static DatagramPacket reply(int stratum, int referenceId)
+    {
+        NtpV3Packet reply = new NtpV3Impl();
+        reply.setMode(NtpV3Packet.MODE_SERVER);
+        reply.setVersion(NtpV3Packet.VERSION_3);
+        reply.setStratum(stratum);
+        reply.setPoll(4);
+        reply.setPrecision(-20);
+        reply.setReferenceId(referenceId);
+        reply.setReferenceTime(TimeStamp.getNtpTime(T1 - 3_600_000L));
+        reply.setOriginateTimeStamp(TimeStamp.getNtpTime(T1));
+        reply.setReceiveTimeStamp(TimeStamp.getNtpTime(T1 + 50));
+        reply.setTransmitTime(TimeStamp.getNtpTime(T1 + 60));
+        return reply.getDatagramPacket();
+    }
+
+    private Path capture() throws Exception
+    {
+        Path file = dir.resolve("replay.capture");
+        DatagramPacket request = request();
+        DatagramPacket primary = reply(1, 0x47505300); // "GPS"
+        DatagramPacket secondary = reply(2, 0xC0A80101); // 192.168.1.1, must not be looked up
+        try (NtpCaptureWriter writer = new NtpCaptureWriter(file))
+        {
+            writer.write(T1, T1 + 20, request.getData(), 0, request.getLength(), primary.getData(), 0, primary.getLength());
+            writer.write(T1, T1 + 20, request.getData(), 0, request.getLength(), secondary.getData(), 0, secondary.getLength());
+        }
+        return file;
+    }
+
+    private static String replay(Path file, List<HashMap<String, Object>> outputs, List<String> reports) throws Exception
+    {
+        try (NtpCaptureReader reader = new NtpCaptureReader(file))
+        {
+            List<TimeInfo> infos = NtpCaptureReplay.decode(reader);
+            reports.addAll(NtpCaptureReplay.convert(infos, outputs));
+            ExampleOrgSocketClient.execute(outputs);
+            return new ObjectMapper().writeValueAsString(outputs);
+        }
+    }
+
+    @Test
+    void replayProducesKnownOutput() throws Exception
+    {
+        List<HashMap<String, Object>> outputs = new ArrayList<>();
+        List<String> reports = new ArrayList<>();
+
+        replay(capture(), outputs, reports);
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("stratum", "1 (Primary Reference; e.g., GPS)");
+        expected.put("leapIndicator", " leap=0, version=3, precision=-20");
+        expected.put("mode", "Server (4)");
+        expected.put("poll", "16 seconds (2 ** 4)");
+        expected.put("rootDispersion", " rootdelay=0.00, rootdispersion(ms): 0.00");
+        expected.put("referenceIdentifier", "71.80.83.0 (GPS)");
+        expected.put("referenceTimestamp", "2024-03-27T16:30");
+        expected.put("originateTimestamp", "2024-03-27T17:30");
+        expected.put("receiveTimestamp", "2024-03-27T17:30:00.050");
+        expected.put("transmitTimestamp", "2024-03-27T17:30:00.060");
+        expected.put("destinationTimestamp", "2024-03-27T17:30:00.020");
+        expected.put("computedDetails", " Roundtrip delay(ms)=10, clock offset(ms)=45");
+
+        assertEquals(2, outputs.size());
+        assertEquals(expected, outputs.get(0));
+        assertEquals("192.168.1.1", outputs.get(1).get("referenceIdentifier"));
+        assertEquals("2 (Secondary Reference; e.g. via NTP or SNTP)", outputs.get(1).get("stratum"));
+    }
+
+    @Test
+    void replayDoesNotDependOnLocalTimeZone() throws Exception
+    {
+        Path file = capture();
+
+        TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+        List<String> newYorkReports = new ArrayList<>();
+        String newYork = replay(file, new ArrayList<>(), newYorkReports);
+
+        TimeZone.setDefault(TimeZone.getTimeZone("Australia/Sydney"));
+        List<String> sydneyReports = new ArrayList<>();
+        String sydney = replay(file, new ArrayList<>(), sydneyReports);
+
+        assertEquals(newYork, sydney);
+        assertEquals(newYorkReports, sydneyReports);
+    }
+
+    @Test
+    void shortReplyIsDecodedLikeTheClientDoes() throws Exception
+    {
+        Path file = dir.resolve("short.capture");
+        DatagramPacket request = request();
+        DatagramPacket reply = reply(1, 0x47505300);
+        try (NtpCaptureWriter writer = new NtpCaptureWriter(file))
+        {
+            writer.write(T1, T1 + 20, request.getData(), 0, request.getLength(), reply.getData(), 0, 20);
+        }
+
+        List<HashMap<String, Object>> outputs = new ArrayList<>();
+        replay(file, outputs, new ArrayList<>());
+
+        assertEquals(1, outputs.size());
+        assertEquals("1 (Primary Reference; e.g., GPS)", outputs.get(0).get("stratum"));
+        // the timestamps were cut off, so they read as zero
+        assertEquals(" Roundtrip delay(ms)=N/A, clock offset(ms)=N/A", outputs.get(0).get("computedDetails"));
+    }
+}
@@ -0,0 +1,121 @@
+package org.example.ntp;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NtpCaptureTest
+{
+    @TempDir
+    Path dir;
+
+    private static byte[] bytes(int length, int seed)
+    {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            bytes[i] = (byte) (seed + i);
+        }
+        return bytes;
+    }
+
+    @Test
+    void headerIsMagicAndVersion() throws IOException
+    {
+        Path file = dir.resolve("empty.capture");
+        new NtpCaptureWriter(file).close();
+
+        ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(file));
+        assertEquals(8, header.remaining());
+        assertEquals(NtpCaptureWriter.MAGIC, header.getInt());
+        assertEquals(NtpCaptureWriter.VERSION, header.getInt());
+
+        try (NtpCaptureReader reader = new NtpCaptureReader(file))
+        {
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    void recordsRoundTripAndRewind() throws IOException
+    {
+        Path file = dir.resolve("records.capture");
+        byte[] request = bytes(48, 1);
+        byte[] reply = bytes(60, 100);
+        byte[] shortReply = bytes(12, 7);
+
+        try (NtpCaptureWriter writer = new NtpCaptureWriter(file))
+        {
+            writer.write(1000L, 1020L, request, 0, 48, reply, 0, 48);
+            writer.write(2000L, 2030L, request, 0, 48, reply, 12, 48);
+            writer.write(3000L, 3040L, request, 0, 48, shortReply, 0, shortReply.length);
+        }
+
+        try (NtpCaptureReader reader = new NtpCaptureReader(file))
+        {
+            for (int pass = 0; pass < 2; pass++)
+            {
+                reader.rewind();
+
+                NtpCaptureReader.Record first = reader.next();
+                assertEquals(1000L, first.getT1());
+                assertEquals(1020L, first.getT4());
+                assertArrayEquals(request, first.getRequest());
+                assertArrayEquals(Arrays.copyOfRange(reply, 0, 48), first.getReply());
+
+                NtpCaptureReader.Record second = reader.next();
+                assertEquals(2000L, second.getT1());
+                assertEquals(2030L, second.getT4());
+                assertArrayEquals(Arrays.copyOfRange(reply, 12, 60), second.getReply());
+
+                NtpCaptureReader.Record third = reader.next();
+                assertEquals(3000L, third.getT1());
+                assertEquals(3040L, third.getT4());
+                assertArrayEquals(shortReply, third.getReply());
+
+                assertFalse(reader.hasNext());
+            }
+        }
+    }
+
+    @Test
+    void truncatedTailIsReported() throws IOException
+    {
+        Path file = dir.resolve("truncated.capture");
+        try (NtpCaptureWriter writer = new NtpCaptureWriter(file))
+        {
+            writer.write(1000L, 1020L, bytes(48, 1), 0, 48, bytes(48, 2), 0, 48);
+            writer.write(2000L, 2030L, bytes(48, 3), 0, 48, bytes(48, 4), 0, 48);
+        }
+
+        byte[] content = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(content, content.length - 10));
+
+        try (NtpCaptureReader reader = new NtpCaptureReader(file))
+        {
+            assertEquals(1000L, reader.next().getT1());
+            assertTrue(reader.hasNext());
+            assertThrows(IOException.class, reader::next);
+        }
+    }
+
+    @Test
+    void foreignFileIsRejected() throws IOException
+    {
+        Path file = dir.resolve("foreign.capture");
+        Files.write(file, new byte[]{'n', 'o', 'p', 'e', 0, 0, 0, 1});
+
+        assertThrows(IOException.class, () -> new NtpCaptureReader(file));
+    }
+}
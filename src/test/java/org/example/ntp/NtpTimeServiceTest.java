@@ -0,0 +1,193 @@
+package org.example.ntp;
+
+import org.apache.commons.net.ntp.NtpV3Impl;
+import org.apache.commons.net.ntp.TimeInfo;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NtpTimeServiceTest
+{
+    private static final String SERVER = "ntp.example.org";
+
+    private static final Duration MAX_AGE = Duration.ofSeconds(30);
+
+    private static final Duration BACKOFF = Duration.ofSeconds(5);
+
+    // tasks are only run when the test says so, which keeps every probe observable
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final AtomicInteger probes = new AtomicInteger();
+
+    private final TimeInfo reply = new TimeInfo(new NtpV3Impl(), 0L, false);
+
+    private NtpTimeService service(NtpTimeService.Prober prober)
+    {
+        return new NtpTimeService(MAX_AGE, BACKOFF, Duration.ofMinutes(1), tasks::add, prober, clock::get);
+    }
+
+    private TimeInfo answer(String ntpServer)
+    {
+        probes.incrementAndGet();
+        return reply;
+    }
+
+    private void runTasks()
+    {
+        Runnable task;
+        while ((task = tasks.poll()) != null)
+        {
+            task.run();
+        }
+    }
+
+    @Test
+    void concurrentCallersShareOneProbe() throws Exception
+    {
+        NtpTimeService service = service(this::answer);
+
+        int callers = 32;
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<TimeInfo>> futures = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < callers; i++)
+        {
+            CompletableFuture<TimeInfo> future = new CompletableFuture<>();
+            futures.add(future);
+            Thread thread = new Thread(() -> {
+                try
+                {
+                    start.await();
+                    service.getTimeInfo(SERVER).whenComplete((info, failure) -> future.complete(info));
+                }
+                catch (InterruptedException exception)
+                {
+                    future.completeExceptionally(exception);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        start.countDown();
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        assertEquals(1, tasks.size());
+
+        runTasks();
+
+        assertEquals(1, probes.get());
+        for (CompletableFuture<TimeInfo> future : futures)
+        {
+            assertSame(reply, future.get(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void freshCacheHitDoesNotProbe()
+    {
+        NtpTimeService service = service(this::answer);
+
+        service.getTimeInfo(SERVER);
+        runTasks();
+
+        clock.addAndGet(MAX_AGE.toNanos());
+        CompletableFuture<TimeInfo> future = service.getTimeInfo(SERVER);
+
+        assertTrue(future.isDone());
+        assertSame(reply, future.join());
+        assertTrue(tasks.isEmpty());
+        assertEquals(1, probes.get());
+    }
+
+    @Test
+    void expiredEntryTriggersReprobe()
+    {
+        NtpTimeService service = service(this::answer);
+
+        service.getTimeInfo(SERVER);
+        runTasks();
+
+        clock.addAndGet(MAX_AGE.toNanos() + 1);
+        CompletableFuture<TimeInfo> future = service.getTimeInfo(SERVER);
+
+        assertEquals(1, tasks.size());
+        runTasks();
+
+        assertSame(reply, future.join());
+        assertEquals(2, probes.get());
+    }
+
+    @Test
+    void failureIsServedUntilBackoffExpires()
+    {
+        IOException unreachable = new IOException("unreachable");
+        NtpTimeService service = service(ntpServer -> {
+            probes.incrementAndGet();
+            throw unreachable;
+        });
+
+        CompletableFuture<Throwable> first = service.getTimeInfo(SERVER).handle((info, failure) -> failure);
+        runTasks();
+        Throwable firstFailure = first.join();
+        assertInstanceOf(CompletionException.class, firstFailure);
+        assertSame(unreachable, firstFailure.getCause());
+
+        for (int i = 0; i < 100; i++)
+        {
+            Throwable cachedFailure = service.getTimeInfo(SERVER).handle((info, failure) -> failure).join();
+            assertSame(firstFailure.getClass(), cachedFailure.getClass());
+            assertSame(unreachable, cachedFailure.getCause());
+        }
+        assertTrue(tasks.isEmpty());
+        assertEquals(1, probes.get());
+
+        clock.addAndGet(BACKOFF.toNanos() + 1);
+        service.getTimeInfo(SERVER);
+
+        assertEquals(1, tasks.size());
+    }
+
+    @Test
+    void droppedTaskDoesNotWedgeServer()
+    {
+        AtomicInteger submitted = new AtomicInteger();
+        NtpTimeService service = new NtpTimeService(MAX_AGE, BACKOFF, Duration.ofMillis(50),
+                task -> submitted.incrementAndGet(), this::answer, clock::get);
+
+        CompletableFuture<TimeInfo> future = service.getTimeInfo(SERVER);
+        CompletableFuture<String> callbackThread = future.handle((info, failure) -> Thread.currentThread().getName());
+
+        assertInstanceOf(TimeoutException.class, assertThrows(CompletionException.class, future::join).getCause());
+        assertFalse(callbackThread.join().contains("DelayScheduler"), callbackThread.join());
+
+        clock.addAndGet(BACKOFF.toNanos() + 1);
+        service.getTimeInfo(SERVER);
+
+        assertEquals(2, submitted.get());
+    }
+}